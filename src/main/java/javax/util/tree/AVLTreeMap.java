@@ -6,8 +6,10 @@ import java.util.*;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.ToLongBiFunction;
 
 /***
  * AVLTree, a kind of balance tree
@@ -15,6 +17,8 @@ import java.util.function.Supplier;
  * - Thread Safe
  * - Basic K-V map store
  * - Top N search, with query limit and offset
+ * - Memory accounting, with optional capacity limit and eviction
+ * - Relaxed balance mode, with deferred rebalancing for write bursts
  *
  * @see <a href="https://en.wikipedia.org/wiki/AVL_tree">https://en.wikipedia.org/wiki/AVL_tree</a>
  * @param <K> key
@@ -25,10 +29,65 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
 
     private static final boolean DEBUG = false;
 
+    /***
+     * estimated shallow size of a tree node in bytes, assuming compressed oops
+     */
+    public static final long NODE_SIZE = 32;
+
+    /***
+     * max balance factor of a node tolerated by relaxed balance mode
+     */
+    public static final int RELAXED_SLACK = 2;
+
+    /***
+     * max lag of relaxed balance mode
+     */
+    public static final int MAX_LAG = 64;
+
     private volatile Node<K, V> root;
     private volatile int size;
+    private volatile long memory;
+    private volatile int lag;
     private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
 
+    private final long maxSize;
+    private final long maxMemory;
+    private final ToLongBiFunction<? super K, ? super V> weigher;
+    private final EvictionPolicy<K> eviction;
+
+    public AVLTreeMap() {
+        this((k, v) -> 0);
+    }
+
+    /***
+     * unbounded tree map store with memory accounting
+     *
+     * @param weigher weight in bytes of key and value, excluding {@link #NODE_SIZE}
+     */
+    public AVLTreeMap(ToLongBiFunction<? super K, ? super V> weigher) {
+        this(0, 0, weigher, null);
+    }
+
+    /***
+     * capacity bounded tree map store, entries are evicted within the write path
+     *
+     * @param maxSize max entry count, non-positive for no limit
+     * @param maxMemory max memory usage in bytes, non-positive for no limit
+     * @param weigher weight in bytes of key and value, excluding {@link #NODE_SIZE}
+     * @param eviction eviction policy, which is required if any limit is set
+     * @see #memoryUsage()
+     */
+    public AVLTreeMap(long maxSize, long maxMemory,
+                      ToLongBiFunction<? super K, ? super V> weigher,
+                      EvictionPolicy<K> eviction) {
+        if ((maxSize > 0 || maxMemory > 0) && eviction == null)
+            throw new IllegalArgumentException("eviction policy is required for a capacity bounded map");
+        this.maxSize = maxSize;
+        this.maxMemory = maxMemory;
+        this.weigher = Objects.requireNonNull(weigher);
+        this.eviction = eviction;
+    }
+
     /***
      * atomic value update with combiner function
      *
@@ -39,26 +98,90 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
      */
     public boolean put(K key, Function<V, V> combiner) {
         return _lock(false, () -> {
-            ThreadLocal<Boolean> flag = ThreadLocal.withInitial(() -> false);
+            ThreadLocal<Pair<V, V>> update = ThreadLocal.withInitial(() -> null);
+            ThreadLocal<Boolean> created = ThreadLocal.withInitial(() -> false);
             root = Impl.insert(root, key, (o) -> {
-                flag.set(true);
-                return combiner.apply(o);
-            });
-            boolean insert = flag.get();
-            if (insert) size++;
-            return insert;
+                V v = combiner.apply(o);
+                update.set(new Pair<>(o, v));
+                return v;
+            }, created, _budget());
+            if (created.get()) _deferred();
+            Pair<V, V> result = update.get();
+            if (result == null) return false;
+            if (created.get()) {
+                size++;
+                memory += NODE_SIZE + weigher.applyAsLong(key, result.getValue());
+            } else {
+                memory += weigher.applyAsLong(key, result.getValue()) - weigher.applyAsLong(key, result.getKey());
+            }
+            if (eviction != null) {
+                eviction.onWrite(key);
+                _evict();
+            }
+            return true;
         });
     }
 
+    /***
+     * the memory usage of tree map store, node overhead plus the weight of keys and values
+     *
+     * @return estimated memory usage in bytes
+     * @see #AVLTreeMap(ToLongBiFunction)
+     */
+    public long memoryUsage() {
+        return memory;
+    }
+
     /***
      * the height of tree
      *
+     * in relaxed balance mode, it may exceed the AVL bound of current size by at most the lag
+     *
      * @return tree height
+     * @see #drift()
      */
     public int height() {
         return Impl.height(root);
     }
 
+    /***
+     * how far the tree is from strict AVL, measured by height
+     *
+     * @return tree height minus the max height of an AVL tree with the same size, 0 if within bound
+     * @see #relax(int)
+     */
+    public int drift() {
+        return Math.max(0, Impl.height(root) - Impl.maxHeight(size));
+    }
+
+    /***
+     * enter or leave relaxed balance mode
+     *
+     * in relaxed balance mode, a node may be off balance by {@link #RELAXED_SLACK}, and each write
+     * performs at most one (single or double) rotation. The write which makes {@link #drift()} exceed
+     * the lag fixes up the whole tree, as well as {@link #rebalance()}
+     *
+     * @param lag max drift, within [1, {@link #MAX_LAG}], or 0 to fix up and leave relaxed balance mode
+     */
+    public void relax(int lag) {
+        if (lag < 0 || lag > MAX_LAG)
+            throw new IllegalArgumentException("lag " + lag + " is out of [0, " + MAX_LAG + "]");
+        _lock(false, () -> {
+            if (lag == 0) _rebalance();
+            this.lag = lag;
+            return null;
+        });
+    }
+
+    /***
+     * fix up relaxed balance, so that the tree is strict AVL again
+     *
+     * @return drift before fix up
+     */
+    public int rebalance() {
+        return _lock(false, this::_rebalance);
+    }
+
     /***
      * max page by key
      *
@@ -89,6 +212,69 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         });
     }
 
+    /***
+     * batch get, all keys are resolved within a single lock and a single merged traversal
+     *
+     * @param keys probe keys
+     * @param result value container, result[i] is the value of keys[i], or null if absent
+     * @return count of keys found within the tree map store
+     */
+    public int getAll(K[] keys, V[] result) {
+        if (result.length < keys.length)
+            throw new IllegalArgumentException("result length " + result.length + " < keys length " + keys.length);
+        Integer[] order = Impl.order(keys);
+        return _lock(true, () -> {
+            Node<K, V>[] found = Impl.multiGet(root, keys, order);
+            int count = 0;
+            for (int i = 0; i < keys.length; i++) {
+                Node<K, V> node = _read(found[i]);
+                result[i] = node == null ? null : node.value;
+                if (node != null) count++;
+            }
+            return count;
+        });
+    }
+
+    /***
+     * batch get, all keys are resolved within a single lock and a single merged traversal
+     *
+     * @param keys probe keys
+     * @param result K-V container, only the keys found within the tree map store are put
+     * @return count of keys found within the tree map store
+     * @see #getAll(Comparable[], Object[])
+     */
+    public int getAll(Collection<? extends K> keys, Map<? super K, ? super V> result) {
+        @SuppressWarnings("unchecked") K[] _keys = (K[]) keys.toArray(new Comparable<?>[0]);
+        Integer[] order = Impl.order(_keys);
+        return _lock(true, () -> {
+            Node<K, V>[] found = Impl.multiGet(root, _keys, order);
+            int count = 0;
+            for (Node<K, V> node : found) {
+                if ((node = _read(node)) == null) continue;
+                result.put(node.key, node.value);
+                count++;
+            }
+            return count;
+        });
+    }
+
+    /***
+     * batch contains, all keys are resolved within a single lock and a single merged traversal
+     *
+     * @param keys probe keys
+     * @return whether all keys are contained within the tree map store
+     */
+    public boolean containsAll(Collection<? extends K> keys) {
+        @SuppressWarnings("unchecked") K[] _keys = (K[]) keys.toArray(new Comparable<?>[0]);
+        Integer[] order = Impl.order(_keys);
+        return _lock(true, () -> {
+            for (Node<K, V> node : Impl.multiGet(root, _keys, order)) {
+                if (node == null || _expired(node)) return false;
+            }
+            return true;
+        });
+    }
+
     @Override
     public int size() {
         return size;
@@ -102,7 +288,10 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
     @Override
     public boolean containsKey(Object key) {
         @SuppressWarnings("unchecked") K _key = (K) key;
-        return _lock(true, () -> Impl.containsKey(root, _key));
+        return _lock(true, () -> {
+            Node<K, V> node = Impl.get(root, _key);
+            return node != null && !_expired(node);
+        });
     }
 
     @Override
@@ -115,7 +304,7 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
     public V get(Object key) {
         @SuppressWarnings("unchecked") K _key = (K) key;
         return _lock(true, () -> {
-            Node<K, V> node = Impl.get(root, _key);
+            Node<K, V> node = _read(Impl.get(root, _key));
             return node == null ? null : node.value;
         });
     }
@@ -130,10 +319,7 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
     public V remove(Object key) {
         @SuppressWarnings("unchecked") K _key = (K) key;
         return _lock(false, () -> {
-            ThreadLocal<Pair<Boolean, V>> valueRef = ThreadLocal.withInitial(() -> null);
-            root = Impl.delete(root, _key, valueRef);
-            Pair<Boolean, V> result = valueRef.get();
-            if (result != null) size--;
+            Pair<Boolean, V> result = _remove(_key);
             return result == null ? null : result.getValue();
         });
     }
@@ -151,6 +337,8 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         _lock(false, () -> {
             root = null;
             size = 0;
+            memory = 0;
+            if (eviction != null) eviction.onClear();
             return null;
         });
     }
@@ -177,7 +365,7 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
     public Set<Entry<K, V>> entrySet() {
         return _lock(true, () -> {
             Set<Entry<K, V>> result = new HashSet<>();
-            Impl.entrySet(root, result);
+            Impl.entrySet(root, result, this::_setValue);
             return result;
         });
     }
@@ -197,10 +385,77 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         });
     }
 
+    /***
+     * strict AVL check of the whole tree
+     *
+     * in relaxed balance mode, it may be false until fix up, see {@link #drift()} for the distance
+     *
+     * @return whether every node is AVL balanced
+     */
     public boolean isBalance() {
         return _lock(true, () -> Impl.isBalanced(root, ThreadLocal.withInitial(() -> 0)));
     }
 
+    private boolean _expired(final Node<K, V> node) {
+        return eviction != null && eviction.isExpired(node.key);
+    }
+
+    private Node<K, V> _read(final Node<K, V> node) {
+        if (node == null || _expired(node)) return null;
+        if (eviction != null) eviction.onRead(node.key);
+        return node;
+    }
+
+    // entry of entrySet() writes through put, so that memory accounting and eviction still apply
+    private V _setValue(final K key, final V value) {
+        @SuppressWarnings("unchecked") V[] old = (V[]) new Object[1];
+        put(key, (o) -> {
+            old[0] = o;
+            return value;
+        });
+        return old[0];
+    }
+
+    private Pair<Boolean, V> _remove(final K key) {
+        ThreadLocal<Pair<Boolean, V>> valueRef = ThreadLocal.withInitial(() -> null);
+        root = Impl.delete(root, key, valueRef, _budget());
+        Pair<Boolean, V> result = valueRef.get();
+        if (result != null) {
+            _deferred();
+            size--;
+            memory -= NODE_SIZE + weigher.applyAsLong(key, result.getValue());
+        }
+        if (eviction != null) eviction.onRemove(key);
+        return result;
+    }
+
+    private int[] _budget() {
+        return lag > 0 ? new int[]{1} : null;
+    }
+
+    private void _deferred() {
+        // any tree of this size is at least log2(size) + 1 high, skip the exact bound below that
+        if (lag > 0 && Impl.height(root) - lag > 32 - Integer.numberOfLeadingZeros(size)
+                && drift() > lag) _rebalance();
+    }
+
+    private int _rebalance() {
+        int drift = drift();
+        root = Impl.fix(root);
+        return drift;
+    }
+
+    private void _evict() {
+        for (K key = eviction.expired(); key != null; key = eviction.expired()) {
+            _remove(key);
+        }
+        while (root != null
+                && (maxSize > 0 && size > maxSize || maxMemory > 0 && memory > maxMemory)) {
+            K key = eviction.victim(Impl.minValueNode(root).key, Impl.maxValueNode(root).key);
+            if (key == null || _remove(key) == null) break;
+        }
+    }
+
     private <O> O _lock(final boolean readOnly, final Supplier<O> task) {
         Lock l = readOnly ? readWriteLock.readLock() : readWriteLock.writeLock();
         l.lock();
@@ -217,7 +472,7 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
     private static class Node<K extends Comparable<K>, V> {
         private volatile K key;
         private volatile V value;
-        private volatile int height = 1;
+        private volatile int height = 1;//sign bit marks the dirty path of relaxed balance mode
         private Node<K, V> left, right;
 
         Node(K key, V value) {
@@ -253,10 +508,11 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         private static <K extends Comparable<K>, V>
         void entrySet(
                 final Node<K, V> N,
-                final Set<Entry<K, V>> result
+                final Set<Entry<K, V>> result,
+                final BiFunction<K, V, V> setter
         ) {
             if (N == null) return;
-            if (N.left != null) entrySet(N.left, result);
+            if (N.left != null) entrySet(N.left, result, setter);
             result.add(new Entry<K, V>() {
                 @Override
                 public K getKey() {
@@ -270,10 +526,10 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
 
                 @Override
                 public V setValue(V value) {
-                    return N.value = value;
+                    return setter.apply(N.key, value);
                 }
             });
-            if (N.right != null) entrySet(N.right, result);
+            if (N.right != null) entrySet(N.right, result, setter);
         }
 
         private static <K extends Comparable<K>, V>
@@ -314,7 +570,20 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         int height(
                 final Node<K, V> N
         ) {
-            return N == null ? 0 : N.height;
+            return N == null ? 0 : N.height & Integer.MAX_VALUE;
+        }
+
+        private static int maxHeight(
+                final int size
+        ) {
+            // min size of AVL tree with height h is N(h) = N(h - 1) + N(h - 2) + 1
+            int h = 0;
+            for (long a = 0, b = 1; b <= size; h++) {
+                long next = a + b + 1;
+                a = b;
+                b = next;
+            }
+            return h;
         }
 
         private static <K extends Comparable<K>, V>
@@ -328,23 +597,29 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
         Node<K, V> insert(
                 final Node<K, V> N,
                 final K key,
-                final Function<V, V> combiner
+                final Function<V, V> combiner,
+                final ThreadLocal<Boolean> created,
+                final int[] budget
         ) {
             /* 1.  Perform the normal BST rotation */
             if (N == null) {
+                created.set(true);
                 return new Node<>(key, combiner.apply(null));
             }
 
             int compare = key.compareTo(N.key);
             if (compare < 0) {
-                N.left = insert(N.left, key, combiner);
+                N.left = insert(N.left, key, combiner, created, budget);
             } else if (compare > 0) {
-                N.right = insert(N.right, key, combiner);
+                N.right = insert(N.right, key, combiner, created, budget);
             } else {
                 N.value = combiner.apply(N.value);
                 return N;
             }
 
+            // Relaxed mode, rotate within the budget and defer the rest to fix up
+            if (budget != null) return relax(N, budget);
+
             /* 2. Update height of this ancestor node */
             N.height = 1 + Math.max(height(N.left),
                     height(N.right));
@@ -396,6 +671,54 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             }
         }
 
+        private static <K extends Comparable<K>>
+        Integer[] order(
+                final K[] keys
+        ) {
+            // indexes of the probe keys in ascending key order, sorted by the caller before taking the lock
+            Integer[] order = new Integer[keys.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+            return order;
+        }
+
+        private static <K extends Comparable<K>, V>
+        Node<K, V>[] multiGet(
+                final Node<K, V> N,
+                final K[] keys,
+                final Integer[] order
+        ) {
+            @SuppressWarnings("unchecked") Node<K, V>[] found = (Node<K, V>[]) new Node<?, ?>[keys.length];
+            multiGet(N, keys, order, 0, order.length, found);
+            return found;
+        }
+
+        private static <K extends Comparable<K>, V>
+        void multiGet(
+                final Node<K, V> N,
+                final K[] keys,
+                final Integer[] order,
+                final int from,
+                final int to,
+                final Node<K, V>[] found
+        ) {
+            if (N == null || from >= to) return;
+
+            // split the sorted probe range by the key of this node,
+            // so that the path from root to here is shared by all of them
+            int lo = from, hi = to;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[order[mid]].compareTo(N.key) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            int eq = lo;
+            while (eq < to && keys[order[eq]].compareTo(N.key) == 0) found[order[eq++]] = N;
+
+            multiGet(N.left, keys, order, from, lo, found);
+            multiGet(N.right, keys, order, eq, to, found);
+        }
+
         private static <K extends Comparable<K>, V>
         boolean containsKey(
                 final Node<K, V> N,
@@ -429,11 +752,25 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             return current;
         }
 
+        private static <K extends Comparable<K>, V>
+        Node<K, V> maxValueNode(
+                final Node<K, V> N
+        ) {
+            Node<K, V> current = N;
+
+        /* loop down to find the rightmost leaf */
+            while (current.right != null)
+                current = current.right;
+
+            return current;
+        }
+
         private static <K extends Comparable<K>, V>
         Node<K, V> delete(
                 Node<K, V> root,
                 final K key,
-                final ThreadLocal<Pair<Boolean, V>> value
+                final ThreadLocal<Pair<Boolean, V>> value,
+                final int[] budget
         ) {
             // STEP 1: PERFORM STANDARD BST DELETE
             if (root == null) return null;
@@ -442,12 +779,12 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             // the root's key, then it lies in left subtree
             int compare = key.compareTo(root.key);
             if (compare < 0)
-                root.left = delete(root.left, key, value);
+                root.left = delete(root.left, key, value, budget);
 
                 // If the key to be deleted is greater than the
                 // root's key, then it lies in right subtree
             else if (compare > 0)
-                root.right = delete(root.right, key, value);
+                root.right = delete(root.right, key, value, budget);
 
                 // if key is same as root's key, then this is the node
                 // to be deleted
@@ -480,13 +817,16 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
                     root.value = temp.value;
 
                     // Delete the inorder successor
-                    root.right = delete(root.right, temp.key, value);
+                    root.right = delete(root.right, temp.key, value, budget);
                 }
             }
 
             // If the tree had only one node then return
             if (root == null) return null;
 
+            // Relaxed mode, rotate within the budget and defer the rest to fix up
+            if (budget != null) return relax(root, budget);
+
             // STEP 2: UPDATE HEIGHT OF THE CURRENT NODE
             root.height = Math.max(height(root.left), height(root.right)) + 1;
 
@@ -556,13 +896,118 @@ public class AVLTreeMap<K extends Comparable<K>, V> implements Map<K, V> {
             return y;
         }
 
+        private static <K extends Comparable<K>, V>
+        Node<K, V> dirty(
+                final Node<K, V> N
+        ) {
+            if (N != null) N.height |= Integer.MIN_VALUE;
+            return N;
+        }
+
+        private static <K extends Comparable<K>, V>
+        Node<K, V> relax(
+                Node<K, V> N,
+                final int[] budget
+        ) {
+            // update height and mark dirty, skip the store if the ancestor is already marked
+            int height = Math.max(height(N.left), height(N.right)) + 1 | Integer.MIN_VALUE;
+            if (N.height != height) N.height = height;
+
+            int balance = getBalance(N);
+            if (Math.abs(balance) > RELAXED_SLACK && budget[0] > 0) {
+                budget[0]--;
+                if (balance > 0) {
+                    if (getBalance(N.left) < 0) N.left = leftRotate(N.left);
+                    N = rightRotate(N);
+                } else {
+                    if (getBalance(N.right) > 0) N.right = rightRotate(N.right);
+                    N = leftRotate(N);
+                }
+                // the rotated nodes are not strict AVL either
+                dirty(N);
+                dirty(N.left);
+                dirty(N.right);
+            }
+            return N;
+        }
+
+        private static <K extends Comparable<K>, V>
+        Node<K, V> fix(
+                final Node<K, V> N
+        ) {
+            // only the nodes on the path of relaxed writes are dirty,
+            // and subtree of a clean node is always AVL balanced
+            if (N == null || N.height >= 0) return N;
+            N.height &= Integer.MAX_VALUE;
+            return join(fix(N.left), N, fix(N.right));
+        }
+
+        /*
+         * Join two AVL balanced subtree with a middle node
+         * @see <a href="https://en.wikipedia.org/wiki/AVL_tree#Set_operations_and_bulk_operations">AVL join</a>
+         */
+        private static <K extends Comparable<K>, V>
+        Node<K, V> join(
+                final Node<K, V> TL,
+                final Node<K, V> k,
+                final Node<K, V> TR
+        ) {
+            if (height(TL) > height(TR) + 1) return joinRight(TL, k, TR);
+            if (height(TR) > height(TL) + 1) return joinLeft(TL, k, TR);
+            k.left = TL;
+            k.right = TR;
+            k.height = Math.max(height(TL), height(TR)) + 1;
+            return k;
+        }
+
+        private static <K extends Comparable<K>, V>
+        Node<K, V> joinRight(
+                final Node<K, V> TL,
+                final Node<K, V> k,
+                final Node<K, V> TR
+        ) {
+            Node<K, V> l = TL.left, c = TL.right;
+            if (height(c) <= height(TR) + 1) {
+                k.left = c;
+                k.right = TR;
+                k.height = Math.max(height(c), height(TR)) + 1;
+                TL.right = height(k) <= height(l) + 1 ? k : rightRotate(k);
+            } else {
+                TL.right = joinRight(c, k, TR);
+            }
+            TL.height = Math.max(height(l), height(TL.right)) + 1;
+            return height(TL.right) <= height(l) + 1 ? TL : leftRotate(TL);
+        }
+
+        private static <K extends Comparable<K>, V>
+        Node<K, V> joinLeft(
+                final Node<K, V> TL,
+                final Node<K, V> k,
+                final Node<K, V> TR
+        ) {
+            Node<K, V> r = TR.right, c = TR.left;
+            if (height(c) <= height(TL) + 1) {
+                k.left = TL;
+                k.right = c;
+                k.height = Math.max(height(TL), height(c)) + 1;
+                TR.left = height(k) <= height(r) + 1 ? k : leftRotate(k);
+            } else {
+                TR.left = joinLeft(TL, k, c);
+            }
+            TR.height = Math.max(height(TR.left), height(r)) + 1;
+            return height(TR.left) <= height(r) + 1 ? TR : rightRotate(TR);
+        }
+
         private static <K extends Comparable<K>, V>
         boolean isBalanced(
                 final Node<K, V> N,
                 final ThreadLocal<Integer> height
         ) {
             if (N == null) return true;
-            if (N.left == null && N.right == null) return true;
+            if (N.left == null && N.right == null) {
+                height.set(1);
+                return true;
+            }
             ThreadLocal<Integer> lh = ThreadLocal.withInitial(() -> 0), rh = ThreadLocal.withInitial(() -> 0);
             if (N.left != null && !isBalanced(N.left, lh)) return false;
             if (N.right != null && !isBalanced(N.right, rh)) return false;
@@ -0,0 +1,91 @@
+package javax.util.tree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/***
+ * Binary codec of keys and values on the partition wire protocol
+ *
+ * @param <T> encoded type
+ * @author chpengzh@foxmail.com
+ * @see PartitionServer
+ * @see PartitionClient
+ */
+public interface Codec<T> {
+
+    /***
+     * 8 bytes, big endian
+     */
+    Codec<Long> LONG = new Codec<Long>() {
+        @Override
+        public void write(DataOutput out, Long value) throws IOException {
+            out.writeLong(value);
+        }
+
+        @Override
+        public Long read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    /***
+     * 4 bytes length, then UTF-8 bytes
+     */
+    Codec<String> STRING = new Codec<String>() {
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+            BYTES.write(out, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return new String(BYTES.read(in), StandardCharsets.UTF_8);
+        }
+    };
+
+    /***
+     * 4 bytes length, then raw bytes
+     *
+     * the length is checked against the bytes left within an input stream (such as a frame),
+     * or the 64MB max frame otherwise, before allocating
+     */
+    Codec<byte[]> BYTES = new Codec<byte[]>() {
+        @Override
+        public void write(DataOutput out, byte[] value) throws IOException {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+
+        @Override
+        public byte[] read(DataInput in) throws IOException {
+            int length = in.readInt();
+            int bound = in instanceof InputStream ? ((InputStream) in).available() : Protocol.MAX_FRAME;
+            if (length < 0 || length > bound)
+                throw new IOException("illegal length " + length + ", limit " + bound);
+            byte[] value = new byte[length];
+            in.readFully(value);
+            return value;
+        }
+    };
+
+    /***
+     * encode value
+     *
+     * @param out output
+     * @param value non null value
+     * @throws IOException if output fails
+     */
+    void write(DataOutput out, T value) throws IOException;
+
+    /***
+     * decode value
+     *
+     * @param in input
+     * @return decoded value
+     * @throws IOException if input fails
+     */
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,200 @@
+package javax.util.tree;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Eviction policy of a capacity bounded {@link AVLTreeMap}
+ *
+ * - Notified by the tree map store within its write path (and read path for {@link #onRead(Comparable)})
+ * - Choose the victim while the map is over capacity
+ *
+ * @param <K> key
+ * @author chpengzh@foxmail.com
+ * @see AVLTreeMap#AVLTreeMap(long, long, java.util.function.ToLongBiFunction, EvictionPolicy)
+ */
+public interface EvictionPolicy<K extends Comparable<K>> {
+
+    /***
+     * the key is inserted or updated
+     *
+     * @param key write key
+     */
+    default void onWrite(K key) {
+    }
+
+    /***
+     * the key is read, may be called by concurrent readers
+     *
+     * @param key read key
+     */
+    default void onRead(K key) {
+    }
+
+    /***
+     * the key is removed, or evicted
+     *
+     * @param key removed key
+     */
+    default void onRemove(K key) {
+    }
+
+    /***
+     * the map is cleared
+     */
+    default void onClear() {
+    }
+
+    /***
+     * key which should be evicted regardless of capacity, checked on every write
+     *
+     * @return expired key, or null if nothing is expired
+     */
+    default K expired() {
+        return null;
+    }
+
+    /***
+     * whether the key should be treated as absent by point reads, before it is evicted by the next write
+     *
+     * @param key read key
+     * @return true if the key is expired
+     */
+    default boolean isExpired(K key) {
+        return false;
+    }
+
+    /***
+     * choose a key to evict while the map is over capacity
+     *
+     * @param min min key within the tree map store
+     * @param max max key within the tree map store
+     * @return victim key, or null to stop eviction
+     */
+    K victim(K min, K max);
+
+    /***
+     * evict the min key first
+     *
+     * @param <K> key
+     * @return eviction policy
+     */
+    static <K extends Comparable<K>> EvictionPolicy<K> minKey() {
+        return (min, max) -> min;
+    }
+
+    /***
+     * evict the max key first
+     *
+     * @param <K> key
+     * @return eviction policy
+     */
+    static <K extends Comparable<K>> EvictionPolicy<K> maxKey() {
+        return (min, max) -> max;
+    }
+
+    /***
+     * evict the least recently read or written key first
+     *
+     * @param <K> key
+     * @return eviction policy
+     */
+    static <K extends Comparable<K>> EvictionPolicy<K> lru() {
+        return new LRU<>();
+    }
+
+    /***
+     * evict the key which is not written within ttl, and the least recently written key while over capacity
+     *
+     * expired keys are removed by the next write; until then, point reads
+     * ({@code get}, {@code getAll}, {@code containsKey}, {@code containsAll}) treat them as absent,
+     * while page queries and views may still include them
+     *
+     * @param ttl time to live since last write
+     * @param unit time unit of ttl
+     * @param <K> key
+     * @return eviction policy
+     */
+    static <K extends Comparable<K>> EvictionPolicy<K> ttl(long ttl, TimeUnit unit) {
+        return new TTL<>(unit.toMillis(ttl));
+    }
+
+    class LRU<K extends Comparable<K>> implements EvictionPolicy<K> {
+
+        private final LinkedHashMap<K, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+        @Override
+        public synchronized void onWrite(K key) {
+            order.put(key, true);
+        }
+
+        @Override
+        public synchronized void onRead(K key) {
+            order.get(key);
+        }
+
+        @Override
+        public synchronized void onRemove(K key) {
+            order.remove(key);
+        }
+
+        @Override
+        public synchronized void onClear() {
+            order.clear();
+        }
+
+        @Override
+        public synchronized K victim(K min, K max) {
+            Iterator<K> it = order.keySet().iterator();
+            return it.hasNext() ? it.next() : null;
+        }
+    }
+
+    class TTL<K extends Comparable<K>> implements EvictionPolicy<K> {
+
+        private final long ttl;
+        private final LinkedHashMap<K, Long> order = new LinkedHashMap<>();
+
+        TTL(long ttl) {
+            this.ttl = ttl;
+        }
+
+        @Override
+        public synchronized void onWrite(K key) {
+            order.remove(key);
+            order.put(key, System.currentTimeMillis());
+        }
+
+        @Override
+        public synchronized void onRemove(K key) {
+            order.remove(key);
+        }
+
+        @Override
+        public synchronized void onClear() {
+            order.clear();
+        }
+
+        @Override
+        public synchronized K expired() {
+            Iterator<Map.Entry<K, Long>> it = order.entrySet().iterator();
+            if (!it.hasNext()) return null;
+            Map.Entry<K, Long> eldest = it.next();
+            return System.currentTimeMillis() - eldest.getValue() >= ttl ? eldest.getKey() : null;
+        }
+
+        @Override
+        public synchronized boolean isExpired(K key) {
+            Long written = order.get(key);
+            return written != null && System.currentTimeMillis() - written >= ttl;
+        }
+
+        @Override
+        public synchronized K victim(K min, K max) {
+            Iterator<K> it = order.keySet().iterator();
+            return it.hasNext() ? it.next() : null;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package javax.util.tree;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+/***
+ * Partition coordinator, route to the {@link PartitionServer} nodes which are partitioned by key range
+ *
+ * - Point operations are routed to the partition which holds the key
+ * - Top N search, gather candidate pages from all partitions in parallel, then k-way merge
+ *
+ * partition i holds keys within [splits[i - 1], splits[i]), so n splits stand for n + 1 partitions
+ *
+ * every connect, read and scatter-gather is bounded by the timeout, and a partition connection
+ * which fails is closed and reconnected by the next call
+ *
+ * @param <K> key
+ * @param <V> value
+ * @author chpengzh@foxmail.com
+ */
+public class PartitionClient<K extends Comparable<K>, V> implements Closeable {
+
+    public static final int DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final List<K> splits;
+    private final List<Partition> partitions = new ArrayList<>();
+    private final ExecutorService executor;
+    private final int timeout;
+
+    public PartitionClient(Codec<K> keyCodec, Codec<V> valueCodec,
+                           List<K> splits, List<InetSocketAddress> addresses) throws IOException {
+        this(keyCodec, valueCodec, splits, addresses, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /***
+     * @param keyCodec key codec
+     * @param valueCodec value codec
+     * @param splits ascending split keys
+     * @param addresses partition node addresses, one more than splits
+     * @param timeout connect and read timeout of each partition, as well as scatter-gather, in millis
+     * @throws IOException if any partition fails to connect
+     */
+    public PartitionClient(Codec<K> keyCodec, Codec<V> valueCodec,
+                           List<K> splits, List<InetSocketAddress> addresses, int timeout) throws IOException {
+        if (timeout <= 0) throw new IllegalArgumentException("timeout " + timeout + " must be positive");
+        if (addresses.size() != splits.size() + 1)
+            throw new IllegalArgumentException(addresses.size() + " partitions for " + splits.size() + " splits");
+        for (int i = 1; i < splits.size(); i++) {
+            if (splits.get(i - 1).compareTo(splits.get(i)) >= 0)
+                throw new IllegalArgumentException("splits must be strictly ascending");
+        }
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.splits = new ArrayList<>(splits);
+        this.timeout = timeout;
+        try {
+            for (InetSocketAddress address : addresses) partitions.add(new Partition(address, timeout));
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        this.executor = Executors.newFixedThreadPool(partitions.size(), r -> {
+            Thread t = new Thread(r, "avl-partition-client");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public V get(K key) {
+        return _call(_route(key), Protocol.GET, out -> keyCodec.write(out, key),
+                (code, in) -> code == Protocol.NULL ? null : valueCodec.read(in));
+    }
+
+    public boolean containsKey(K key) {
+        return _call(_route(key), Protocol.CONTAINS, out -> keyCodec.write(out, key),
+                (code, in) -> in.readBoolean());
+    }
+
+    public V put(K key, V value) {
+        Objects.requireNonNull(value);
+        return _call(_route(key), Protocol.PUT, out -> {
+            keyCodec.write(out, key);
+            valueCodec.write(out, value);
+        }, (code, in) -> value);
+    }
+
+    public V remove(K key) {
+        return _call(_route(key), Protocol.REMOVE, out -> keyCodec.write(out, key),
+                (code, in) -> code == Protocol.NULL ? null : valueCodec.read(in));
+    }
+
+    public int size() {
+        int size = 0;
+        for (int partitionSize : _gather(Protocol.SIZE, out -> {
+        }, (code, in) -> in.readInt())) {
+            size += partitionSize;
+        }
+        return size;
+    }
+
+    public void clear() {
+        _gather(Protocol.CLEAR, out -> {
+        }, (code, in) -> null);
+    }
+
+    /***
+     * max page by key, among all partitions
+     *
+     * each partition answers a candidate page of (offset + limit) entries, which must be encoded within
+     * 64MB ({@code Protocol.MAX_FRAME}), otherwise the call fails with {@link IllegalStateException}
+     *
+     * @param offset start offset
+     * @param limit fetch limit
+     * @return the K-V result within the partitioned store
+     * @see AVLTreeMap#max(int, int)
+     */
+    public LinkedHashMap<K, V> max(int offset, int limit) {
+        return _merge(Protocol.MAX, offset, limit, Comparator.reverseOrder());
+    }
+
+    /***
+     * min page by key, among all partitions
+     *
+     * each partition answers a candidate page of (offset + limit) entries, which must be encoded within
+     * 64MB ({@code Protocol.MAX_FRAME}), otherwise the call fails with {@link IllegalStateException}
+     *
+     * @param offset start offset
+     * @param limit fetch limit
+     * @return the K-V result within the partitioned store
+     * @see AVLTreeMap#min(int, int)
+     */
+    public LinkedHashMap<K, V> min(int offset, int limit) {
+        return _merge(Protocol.MIN, offset, limit, Comparator.naturalOrder());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor != null) executor.shutdownNow();
+        for (Partition partition : partitions) partition.close();
+    }
+
+    private Partition _route(K key) {
+        int index = Collections.binarySearch(splits, key);
+        return partitions.get(index >= 0 ? index + 1 : -index - 1);
+    }
+
+    private LinkedHashMap<K, V> _merge(byte code, int offset, int limit, Comparator<K> order) {
+        // any of the top (offset + limit) keys must be within the top (offset + limit) page of its partition
+        int candidates = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        List<List<Map.Entry<K, V>>> pages = _gather(code, out -> {
+            out.writeInt(0);
+            out.writeInt(candidates);
+        }, (c, in) -> {
+            List<Map.Entry<K, V>> page = new ArrayList<>();
+            for (int n = in.readInt(); n > 0; n--) {
+                K key = keyCodec.read(in);
+                page.add(new AbstractMap.SimpleImmutableEntry<>(key, valueCodec.read(in)));
+            }
+            return page;
+        });
+
+        PriorityQueue<PeekIterator<Map.Entry<K, V>>> heads = new PriorityQueue<>(
+                Math.max(pages.size(), 1), (a, b) -> order.compare(a.peek().getKey(), b.peek().getKey()));
+        for (List<Map.Entry<K, V>> page : pages) {
+            if (!page.isEmpty()) heads.add(new PeekIterator<>(page.iterator()));
+        }
+        LinkedHashMap<K, V> result = new LinkedHashMap<>();
+        for (int id = 0; id < candidates && !heads.isEmpty(); id++) {
+            PeekIterator<Map.Entry<K, V>> head = heads.poll();
+            Map.Entry<K, V> entry = head.next();
+            if (id >= offset) result.put(entry.getKey(), entry.getValue());
+            if (head.hasNext()) heads.add(head);
+        }
+        return result;
+    }
+
+    private <O> List<O> _gather(byte code, Encoder request, Decoder<O> response) {
+        List<Future<O>> futures = new ArrayList<>();
+        for (Partition partition : partitions) {
+            futures.add(executor.submit(() -> _call(partition, code, request, response)));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        List<O> result = new ArrayList<>();
+        int i = 0;
+        try {
+            for (; i < futures.size(); i++) {
+                result.add(futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            // closing the connection unblocks the stalled call, which reconnects next time
+            partitions.get(i).close();
+            throw new UncheckedIOException(new SocketTimeoutException(
+                    "partition " + partitions.get(i) + " timed out after " + timeout + "ms"));
+        }
+        return result;
+    }
+
+    private <O> O _call(Partition partition, byte code, Encoder request, Decoder<O> response) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            request.write(new DataOutputStream(payload));
+            return partition.call(Protocol.frame(code, payload), response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface Encoder {
+        void write(DataOutput out) throws IOException;
+    }
+
+    private interface Decoder<O> {
+        O read(byte code, DataInput in) throws IOException;
+    }
+
+    private static class Partition {
+
+        private final InetSocketAddress address;
+        private final int timeout;
+        private volatile Socket socket;
+        private DataInputStream in;
+        private OutputStream out;
+
+        Partition(InetSocketAddress address, int timeout) throws IOException {
+            this.address = address;
+            this.timeout = timeout;
+            _connect();
+        }
+
+        synchronized <O> O call(ByteBuffer request, Decoder<O> response) throws IOException {
+            if (socket == null || socket.isClosed()) _connect();
+            byte[] frame;
+            try {
+                out.write(request.array(), request.position(), request.remaining());
+                out.flush();
+                int length = in.readInt();
+                if (length <= 0 || length > Protocol.MAX_FRAME)
+                    throw new IOException("illegal frame length " + length);
+                frame = new byte[length];
+                in.readFully(frame);
+            } catch (IOException e) {
+                // the connection may be broken within a frame, never reuse it
+                close();
+                throw e;
+            }
+            DataInputStream payload = new DataInputStream(
+                    new ByteArrayInputStream(frame, 1, frame.length - 1));
+            if (frame[0] == Protocol.ERROR) throw new IllegalStateException(Codec.STRING.read(payload));
+            return response.read(frame[0], payload);
+        }
+
+        void close() {
+            Socket current = socket;
+            if (current == null) return;
+            try {
+                current.close();
+            } catch (IOException ignore) {
+            }
+        }
+
+        private void _connect() throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(timeout);
+                socket.connect(address, timeout);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new BufferedOutputStream(socket.getOutputStream());
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            this.socket = socket;
+        }
+
+        @Override
+        public String toString() {
+            return address.toString();
+        }
+    }
+
+    private static class PeekIterator<E> implements Iterator<E> {
+
+        private final Iterator<E> it;
+        private E next;
+
+        PeekIterator(Iterator<E> it) {
+            this.it = it;
+            this.next = it.next();
+        }
+
+        E peek() {
+            return next;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public E next() {
+            E current = next;
+            next = it.hasNext() ? it.next() : null;
+            return current;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package javax.util.tree;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/***
+ * Partition node, serve a local {@link AVLTreeMap} over TCP
+ *
+ * - Non-blocking NIO, a single selector thread
+ * - Binary frame protocol, see {@link Protocol}
+ * - Hold one key range of the partitioned store, routed by {@link PartitionClient}
+ *
+ * run as a standalone node process: {@code java javax.util.tree.PartitionServer [port] [host]},
+ * with long keys and string values
+ *
+ * @param <K> key
+ * @param <V> value
+ * @author chpengzh@foxmail.com
+ */
+public class PartitionServer<K extends Comparable<K>, V> implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(PartitionServer.class.getName());
+
+    /***
+     * pause of accepting after a failure, such as running out of file descriptors
+     */
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+
+    private final AVLTreeMap<K, V> map;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final SelectionKey acceptKey;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long acceptPausedUntil;
+
+    public PartitionServer(AVLTreeMap<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec,
+                           InetSocketAddress address) throws IOException {
+        this.map = map;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.selector = Selector.open();
+        try {
+            this.server = ServerSocketChannel.open();
+        } catch (IOException e) {
+            selector.close();
+            throw e;
+        }
+        try {
+            server.bind(address);
+            server.configureBlocking(false);
+            this.acceptKey = server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        this.worker = new Thread(this::loop, "avl-partition-" + getAddress().getPort());
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /***
+     * the bound address, with the actual port if bound to port 0
+     *
+     * @return local address
+     */
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loop() {
+        try {
+            while (running) {
+                selector.select(acceptPausedUntil == 0 ? 0
+                        : Math.max(1, acceptPausedUntil - System.currentTimeMillis()));
+                if (acceptPausedUntil != 0 && System.currentTimeMillis() >= acceptPausedUntil) {
+                    acceptPausedUntil = 0;
+                    acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key == acceptKey) {
+                        _accept();
+                        continue;
+                    }
+                    try {
+                        if (key.isReadable()) ((Connection) key.attachment()).read(key);
+                        if (key.isValid() && key.isWritable()) ((Connection) key.attachment()).flush(key);
+                    } catch (IOException | RuntimeException e) {
+                        _close(key);
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            LOG.log(Level.SEVERE, "partition server " + server + " stopped", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException ignore) {
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private void _accept() {
+        SocketChannel channel;
+        try {
+            channel = server.accept();
+        } catch (IOException e) {
+            // keep listening, but stop selecting the accept key for a while instead of spinning on it
+            LOG.log(Level.WARNING, "partition server " + server + " failed to accept", e);
+            acceptKey.interestOps(0);
+            acceptPausedUntil = System.currentTimeMillis() + ACCEPT_BACKOFF_MILLIS;
+            return;
+        }
+        if (channel == null) return;
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.register(selector, SelectionKey.OP_READ, new Connection());
+        } catch (IOException e) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private void _close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private ByteBuffer _handle(byte code, DataInput in) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        switch (code) {
+            case Protocol.GET:
+            case Protocol.REMOVE: {
+                K key = keyCodec.read(in);
+                V value = code == Protocol.GET ? map.get(key) : map.remove(key);
+                if (value == null) return Protocol.frame(Protocol.NULL, payload);
+                valueCodec.write(out, value);
+                break;
+            }
+            case Protocol.CONTAINS:
+                out.writeBoolean(map.containsKey(keyCodec.read(in)));
+                break;
+            case Protocol.PUT: {
+                K key = keyCodec.read(in);
+                map.put(key, valueCodec.read(in));
+                break;
+            }
+            case Protocol.SIZE:
+                out.writeInt(map.size());
+                break;
+            case Protocol.MAX:
+            case Protocol.MIN: {
+                int offset = in.readInt(), limit = in.readInt();
+                LinkedHashMap<K, V> page = code == Protocol.MAX ? map.max(offset, limit) : map.min(offset, limit);
+                out.writeInt(page.size());
+                for (Map.Entry<K, V> entry : page.entrySet()) {
+                    keyCodec.write(out, entry.getKey());
+                    valueCodec.write(out, entry.getValue());
+                    // answer ERROR rather than a frame which the client rejects
+                    if (1 + payload.size() > Protocol.MAX_FRAME)
+                        throw new IOException("page of " + page.size() + " entries exceeds max frame "
+                                + Protocol.MAX_FRAME + " bytes");
+                }
+                break;
+            }
+            case Protocol.CLEAR:
+                map.clear();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown request code " + code);
+        }
+        return Protocol.frame(Protocol.OK, payload);
+    }
+
+    private class Connection {
+
+        private ByteBuffer in = ByteBuffer.allocate(4096);
+        private final Queue<ByteBuffer> out = new ArrayDeque<>();
+
+        void read(SelectionKey key) throws IOException {
+            if (((SocketChannel) key.channel()).read(in) < 0) throw new EOFException();
+            _serve(key);
+        }
+
+        void flush(SelectionKey key) throws IOException {
+            _write(key);
+            // resume with the frames which are pipelined while the response is pending
+            if (out.isEmpty()) _serve(key);
+        }
+
+        /***
+         * serve the buffered frames one by one, and stop reading while a response is pending,
+         * so that a client which never reads can not grow the server memory
+         */
+        private void _serve(SelectionKey key) throws IOException {
+            in.flip();
+            while (out.isEmpty() && in.remaining() >= 4) {
+                int length = in.getInt(in.position());
+                if (length <= 0 || length > Protocol.MAX_FRAME)
+                    throw new IOException("illegal frame length " + length);
+                if (in.remaining() < 4 + length) {
+                    if (in.capacity() < 4 + length) {
+                        ByteBuffer grow = ByteBuffer.allocate(4 + length);
+                        grow.put(in);
+                        in = grow;
+                        in.flip();
+                    }
+                    break;
+                }
+                in.getInt();
+                byte[] frame = new byte[length];
+                in.get(frame);
+                out.add(_response(frame));
+                _write(key);
+            }
+            in.compact();
+            key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+        }
+
+        private void _write(SelectionKey key) throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            while (!out.isEmpty()) {
+                channel.write(out.peek());
+                if (out.peek().hasRemaining()) break;
+                out.poll();
+            }
+        }
+
+        private ByteBuffer _response(byte[] frame) throws IOException {
+            try {
+                return _handle(frame[0], new DataInputStream(new ByteArrayInputStream(frame, 1, frame.length - 1)));
+            } catch (RuntimeException | IOException e) {
+                // the whole frame is consumed, so a bad request does not break the connection
+                ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                Codec.STRING.write(new DataOutputStream(payload), String.valueOf(e));
+                return Protocol.frame(Protocol.ERROR, payload);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        String host = args.length > 1 ? args[1] : "127.0.0.1";
+        PartitionServer<Long, String> server = new PartitionServer<>(new AVLTreeMap<>(),
+                Codec.LONG, Codec.STRING, new InetSocketAddress(host, port));
+        System.out.println("PartitionServer listening on " + server.getAddress().getPort());
+        server.worker.join();
+    }
+}
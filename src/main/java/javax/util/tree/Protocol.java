@@ -0,0 +1,56 @@
+package javax.util.tree;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/***
+ * Partition wire protocol, both request and response are framed as
+ *
+ * [int length][byte code][payload], where length = 1 + payload length
+ *
+ * - GET, REMOVE: key => OK value | NULL
+ * - CONTAINS: key => OK boolean
+ * - PUT: key value => OK
+ * - SIZE: => OK int
+ * - MAX, MIN: int offset, int limit => OK int n, n * (key value), or ERROR if the page exceeds MAX_FRAME
+ * - CLEAR: => OK
+ * - any request may be answered by ERROR string message, see {@link Codec#STRING}
+ *
+ * frames longer than MAX_FRAME are illegal, so are lengths within the payload which exceed the frame
+ *
+ * @author chpengzh@foxmail.com
+ */
+final class Protocol {
+
+    static final byte GET = 1;
+    static final byte PUT = 2;
+    static final byte REMOVE = 3;
+    static final byte CONTAINS = 4;
+    static final byte SIZE = 5;
+    static final byte MAX = 6;
+    static final byte MIN = 7;
+    static final byte CLEAR = 8;
+
+    static final byte OK = 0;
+    static final byte NULL = 1;
+    static final byte ERROR = 2;
+
+    static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    private Protocol() {
+    }
+
+    /***
+     * wrap the code and payload as a frame
+     *
+     * @param code request or response code
+     * @param payload payload bytes
+     * @return frame buffer, ready to write
+     */
+    static ByteBuffer frame(byte code, ByteArrayOutputStream payload) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + 1 + payload.size());
+        frame.putInt(1 + payload.size()).put(code).put(payload.toByteArray());
+        frame.flip();
+        return frame;
+    }
+}
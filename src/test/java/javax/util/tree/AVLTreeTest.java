@@ -4,6 +4,7 @@ import org.junit.*;
 import org.junit.runners.MethodSorters;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 @FixMethodOrder(value = MethodSorters.NAME_ASCENDING)
@@ -145,4 +146,176 @@ public class AVLTreeTest {
         Assert.assertTrue(!top.hasNext());
     }
 
+    @Test
+    public void t10MultiGetTest() {
+        Map<Long, Long> contains = new HashMap<>();
+        for (long i = 0; i < 256L * 256L; i++) {
+            long next = rand.nextLong();
+            map.put(next, next);
+            contains.put(next, next);
+        }
+        List<Long> probe = new ArrayList<>();
+        Iterator<Long> it = contains.keySet().iterator();
+        for (int i = 0; i < 4096; i++) {
+            probe.add(i % 2 == 0 ? it.next() : rand.nextLong());
+        }
+        probe.add(probe.get(0));//duplicated key
+
+        Long[] values = new Long[probe.size()];
+        int found = map.getAll(probe.toArray(new Long[0]), values);
+        int expect = 0;
+        for (int i = 0; i < probe.size(); i++) {
+            Assert.assertEquals(contains.get(probe.get(i)), values[i]);
+            if (contains.containsKey(probe.get(i))) expect++;
+        }
+        Assert.assertEquals(expect, found);
+
+        Map<Long, Long> result = new HashMap<>();
+        Assert.assertEquals(expect, map.getAll(probe, result));
+        for (Long key : probe) {
+            Assert.assertEquals(contains.get(key), result.get(key));
+        }
+
+        Assert.assertTrue(map.containsAll(result.keySet()));
+        Assert.assertEquals(result.size() == new HashSet<>(probe).size(), map.containsAll(probe));
+    }
+
+    @Test
+    public void t11MemoryTest() {
+        AVLTreeMap<Long, String> map = new AVLTreeMap<>((k, v) -> 16 + (v == null ? 0 : v.length()));
+        long weight = 0;
+        for (long i = 0; i < 1024L; i++) {
+            map.put(i, "v" + i);
+            weight += AVLTreeMap.NODE_SIZE + 16 + ("v" + i).length();
+        }
+        Assert.assertEquals(weight, map.memoryUsage());
+
+        map.put(0L, "updated");
+        weight += "updated".length() - "v0".length();
+        Assert.assertEquals(1024, map.size());
+        Assert.assertEquals(weight, map.memoryUsage());
+
+        map.remove(1L);
+        weight -= AVLTreeMap.NODE_SIZE + 16 + "v1".length();
+        Assert.assertEquals(weight, map.memoryUsage());
+
+        for (Map.Entry<Long, String> entry : map.entrySet()) {
+            if (entry.getKey() != 2L) continue;
+            Assert.assertEquals("v2", entry.setValue("aaaaaaaaaa"));
+            Assert.assertEquals("aaaaaaaaaa", entry.getValue());
+        }
+        weight += "aaaaaaaaaa".length() - "v2".length();
+        Assert.assertEquals(weight, map.memoryUsage());
+
+        map.clear();
+        Assert.assertEquals(0, map.memoryUsage());
+
+        AVLTreeMap<Long, String> bounded = new AVLTreeMap<Long, String>(
+                0, 10 * (AVLTreeMap.NODE_SIZE + 16 + 2), (k, v) -> 16 + v.length(), EvictionPolicy.minKey());
+        for (long i = 0; i < 10L; i++) bounded.put(i, "v" + i);
+        for (Map.Entry<Long, String> entry : bounded.entrySet()) {
+            if (entry.getKey() == 9L) entry.setValue("aaaaaaaaaa");
+        }
+        Assert.assertEquals(9, bounded.size());
+        Assert.assertTrue(!bounded.containsKey(0L));
+        Assert.assertTrue(bounded.memoryUsage() <= 10 * (AVLTreeMap.NODE_SIZE + 16 + 2));
+    }
+
+    @Test
+    public void t12EvictionTest() {
+        AVLTreeMap<Long, Long> min = new AVLTreeMap<Long, Long>(100, 0, (k, v) -> 0L, EvictionPolicy.minKey());
+        AVLTreeMap<Long, Long> max = new AVLTreeMap<Long, Long>(0, 100 * AVLTreeMap.NODE_SIZE, (k, v) -> 0L, EvictionPolicy.maxKey());
+        AVLTreeMap<Long, Long> lru = new AVLTreeMap<Long, Long>(100, 0, (k, v) -> 0L, EvictionPolicy.lru());
+        for (long i = 0; i < 1000L; i++) {
+            min.put(i, i);
+            max.put(i, i);
+            lru.put(i, i);
+            lru.get(0L);
+        }
+        Assert.assertEquals(100, min.size());
+        Assert.assertEquals(Long.valueOf(900), min.min(0, 1).keySet().iterator().next());
+        Assert.assertEquals(100, max.size());
+        Assert.assertEquals(Long.valueOf(99), max.max(0, 1).keySet().iterator().next());
+        Assert.assertEquals(100, lru.size());
+        Assert.assertTrue(lru.containsKey(0L));
+        Assert.assertTrue(!lru.containsKey(1L));
+        Assert.assertTrue(lru.containsKey(999L));
+        Assert.assertTrue(min.isBalance() && max.isBalance() && lru.isBalance());
+
+        AVLTreeMap<Long, Long> ttl = new AVLTreeMap<Long, Long>(0, 0, (k, v) -> 0L, EvictionPolicy.ttl(0, TimeUnit.MILLISECONDS));
+        ttl.put(1L, 1L);
+        ttl.put(2L, 2L);
+        Assert.assertEquals(0, ttl.size());
+        Assert.assertEquals(0, ttl.memoryUsage());
+    }
+
+    @Test
+    public void t14ExpiredReadTest() throws InterruptedException {
+        AVLTreeMap<Long, Long> ttl = new AVLTreeMap<Long, Long>(0, 0, (k, v) -> 0L, EvictionPolicy.ttl(50, TimeUnit.MILLISECONDS));
+        ttl.put(1L, 1L);
+        Assert.assertEquals(Long.valueOf(1), ttl.get(1L));
+        Thread.sleep(100);
+        Assert.assertNull(ttl.get(1L));
+        Assert.assertTrue(!ttl.containsKey(1L));
+        Assert.assertTrue(!ttl.containsAll(Collections.singletonList(1L)));
+        Assert.assertEquals(0, ttl.getAll(new Long[]{1L}, new Long[1]));
+        Assert.assertEquals(1, ttl.size());
+        ttl.put(2L, 2L);
+        Assert.assertEquals(1, ttl.size());
+        Assert.assertEquals(Long.valueOf(2), ttl.get(2L));
+    }
+
+    @Test
+    public void t13RelaxedTest() {
+        Set<Long> contains = new HashSet<>();
+        map.relax(8);
+        for (int i = 0; i < 256 * 256; i++) {
+            Long next = (long) rand.nextInt(256 * 256);
+            map.put(next, next);
+            contains.add(next);
+            Assert.assertTrue(map.drift() <= 8);
+        }
+        for (int i = 0; i < 256 * 256; i++) {
+            Long next = (long) rand.nextInt(256 * 256);
+            Assert.assertEquals(contains.remove(next) ? next : null, map.remove(next));
+            Assert.assertTrue(map.drift() <= 8);
+        }
+        map.rebalance();
+        Assert.assertEquals(0, map.drift());
+        Assert.assertTrue(map.isBalance());
+        Assert.assertEquals(contains.size(), map.size());
+        Assert.assertEquals(contains, map.keySet());
+
+        map.put(-1L, -1L);
+        map.relax(0);
+        Assert.assertTrue(map.isBalance());
+        map.put(-2L, -2L);
+        long min = (long) (Math.pow((1 + Math.sqrt(5)) / 2, map.height() + 1) / Math.sqrt(5) - 1);//min size
+        Assert.assertTrue(map.size() >= min);
+    }
+
+    @Test
+    public void t15RelaxedOrderedTest() {
+        LOG.info("=> Relaxed ordered insert 1M items with max lag, check if height is bounded");
+        map.relax(AVLTreeMap.MAX_LAG);
+        for (long i = 0; i < 1024L * 1024L; i++) {
+            map.put(i, i);
+            if (i % 1000L == 0) Assert.assertTrue(map.drift() <= AVLTreeMap.MAX_LAG);
+        }
+        for (long i = 2 * 1024L * 1024L; i > 1024L * 1024L; i--) {
+            map.put(i, i);
+        }
+        Assert.assertTrue(map.drift() <= AVLTreeMap.MAX_LAG);
+        Assert.assertTrue(map.height() <= 2 * 21);
+        Assert.assertEquals(2 * 1024 * 1024, map.size());
+        map.relax(0);
+        Assert.assertTrue(map.isBalance());
+
+        try {
+            map.relax(AVLTreeMap.MAX_LAG + 1);
+            Assert.fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
 }
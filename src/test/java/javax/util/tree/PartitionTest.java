@@ -0,0 +1,240 @@
+package javax.util.tree;
+
+import org.junit.*;
+import org.junit.runners.MethodSorters;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+@FixMethodOrder(value = MethodSorters.NAME_ASCENDING)
+public class PartitionTest {
+
+    private static final Logger LOG = Logger.getLogger(PartitionTest.class.getName());
+
+    private static final List<Process> nodes = new ArrayList<>();
+    private static PartitionClient<Long, String> client;
+
+    private final Random rand = new Random(System.currentTimeMillis());
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        LOG.info("=> Start 3 partition node processes on localhost");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Process node = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    PartitionServer.class.getName(), "0").redirectErrorStream(true).start();
+            nodes.add(node);
+            String line = new BufferedReader(new InputStreamReader(node.getInputStream())).readLine();
+            Assert.assertNotNull(line);
+            int port = Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+            addresses.add(new InetSocketAddress("127.0.0.1", port));
+        }
+        client = new PartitionClient<>(Codec.LONG, Codec.STRING, Arrays.asList(-1000L, 1000L), addresses);
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        if (client != null) client.close();
+        for (Process node : nodes) node.destroy();
+    }
+
+    @After
+    public void after() {
+        client.clear();
+        Assert.assertEquals(0, client.size());
+    }
+
+    @Test
+    public void t01PointTest() {
+        Map<Long, String> contains = new HashMap<>();
+        for (int i = 0; i < 4096; i++) {
+            long next = rand.nextInt(8192) - 4096;
+            client.put(next, "v" + next);
+            contains.put(next, "v" + next);
+        }
+        Assert.assertEquals(contains.size(), client.size());
+        for (long key = -4096; key < 4096; key++) {
+            Assert.assertEquals(contains.get(key), client.get(key));
+            Assert.assertEquals(contains.containsKey(key), client.containsKey(key));
+        }
+        for (int i = 0; i < 4096; i++) {
+            long next = rand.nextInt(8192) - 4096;
+            Assert.assertEquals(contains.remove(next), client.remove(next));
+        }
+        Assert.assertEquals(contains.size(), client.size());
+    }
+
+    @Test
+    public void t02TopTest() {
+        TreeMap<Long, String> contains = new TreeMap<>();
+        for (int i = 0; i < 4096; i++) {
+            long next = rand.nextInt(8192) - 4096;
+            client.put(next, "v" + next);
+            contains.put(next, "v" + next);
+        }
+        for (int round = 0; round < 16; round++) {
+            int offset = rand.nextInt(2048);
+            int limit = rand.nextInt(2048);
+            Assert.assertEquals(page(contains.descendingMap(), offset, limit),
+                    new ArrayList<>(client.max(offset, limit).entrySet()));
+            Assert.assertEquals(page(contains, offset, limit),
+                    new ArrayList<>(client.min(offset, limit).entrySet()));
+        }
+    }
+
+    @Test
+    public void t03TimeoutTest() throws Exception {
+        LOG.info("=> Stalled partition, check if calls time out and reconnect");
+        AtomicInteger accepted = new AtomicInteger();
+        List<Socket> stalled = Collections.synchronizedList(new ArrayList<>());
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        stalled.add(server.accept());
+                        accepted.incrementAndGet();
+                    }
+                } catch (IOException ignore) {
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getLocalPort());
+            try (PartitionClient<Long, String> stall = new PartitionClient<>(Codec.LONG, Codec.STRING,
+                    Collections.emptyList(), Collections.singletonList(address), 200)) {
+                for (int i = 0; i < 2; i++) {
+                    long start = System.currentTimeMillis();
+                    try {
+                        stall.get(1L);
+                        Assert.fail();
+                    } catch (UncheckedIOException ignore) {
+                    }
+                    Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+                }
+                try {
+                    stall.max(0, 10);
+                    Assert.fail();
+                } catch (UncheckedIOException ignore) {
+                }
+            }
+            Assert.assertEquals(3, accepted.get());
+        } finally {
+            for (Socket socket : stalled) socket.close();
+        }
+    }
+
+    @Test
+    public void t04ErrorTest() throws Exception {
+        LOG.info("=> Error with a long message, check if it is answered by an error frame");
+        char[] chars = new char[100 * 1024];
+        Arrays.fill(chars, 'e');
+        String message = new String(chars);
+        Codec<String> broken = new Codec<String>() {
+            @Override
+            public void write(DataOutput out, String value) throws IOException {
+                Codec.STRING.write(out, value);
+            }
+
+            @Override
+            public String read(DataInput in) throws IOException {
+                String value = Codec.STRING.read(in);
+                if (value.startsWith("bad")) throw new IllegalArgumentException(message);
+                return value;
+            }
+        };
+        try (PartitionServer<Long, String> server = new PartitionServer<>(new AVLTreeMap<>(),
+                Codec.LONG, broken, new InetSocketAddress("127.0.0.1", 0));
+             PartitionClient<Long, String> local = new PartitionClient<>(Codec.LONG, Codec.STRING,
+                     Collections.emptyList(), Collections.singletonList(server.getAddress()))) {
+            try {
+                local.put(1L, "bad");
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertTrue(e.getMessage().contains(message));
+            }
+            local.put(1L, "good");
+            Assert.assertEquals("good", local.get(1L));
+        }
+    }
+
+    @Test
+    public void t05MalformedTest() throws Exception {
+        LOG.info("=> Malformed and pipelined frames, check if they are answered in order");
+        AVLTreeMap<Long, String> map = new AVLTreeMap<>();
+        map.put(1L, "v1");
+        try (PartitionServer<Long, String> server = new PartitionServer<>(map,
+                Codec.LONG, Codec.STRING, new InetSocketAddress("127.0.0.1", 0));
+             Socket socket = new Socket()) {
+            socket.connect(server.getAddress(), 1000);
+            socket.setSoTimeout(5000);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            // string length far beyond the frame
+            out.writeInt(1 + 8 + 4);
+            out.writeByte(Protocol.PUT);
+            out.writeLong(2L);
+            out.writeInt(Integer.MAX_VALUE - 8);
+            // pipelined without reading
+            for (int i = 0; i < 10000; i++) {
+                out.writeInt(1 + 8);
+                out.writeByte(Protocol.GET);
+                out.writeLong(1L);
+            }
+            out.flush();
+
+            byte[] frame = new byte[in.readInt()];
+            in.readFully(frame);
+            Assert.assertEquals(Protocol.ERROR, frame[0]);
+            for (int i = 0; i < 10000; i++) {
+                frame = new byte[in.readInt()];
+                in.readFully(frame);
+                Assert.assertEquals(Protocol.OK, frame[0]);
+                Assert.assertEquals("v1", Codec.STRING.read(
+                        new DataInputStream(new ByteArrayInputStream(frame, 1, frame.length - 1))));
+            }
+            Assert.assertFalse(map.containsKey(2L));
+        }
+    }
+
+    @Test
+    public void t06LargePageTest() throws Exception {
+        LOG.info("=> Page larger than a frame, check if it is answered by an error frame");
+        char[] chars = new char[1024 * 1024];
+        Arrays.fill(chars, 'v');
+        String value = new String(chars);
+        AVLTreeMap<Long, String> map = new AVLTreeMap<>();
+        for (long i = 0; i < Protocol.MAX_FRAME / value.length() + 1; i++) map.put(i, value);
+        try (PartitionServer<Long, String> server = new PartitionServer<>(map,
+                Codec.LONG, Codec.STRING, new InetSocketAddress("127.0.0.1", 0));
+             PartitionClient<Long, String> local = new PartitionClient<>(Codec.LONG, Codec.STRING,
+                     Collections.emptyList(), Collections.singletonList(server.getAddress()))) {
+            try {
+                local.max(0, map.size());
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertTrue(e.getMessage().contains("max frame"));
+            }
+            Assert.assertEquals(10, local.min(0, 10).size());
+            Assert.assertEquals(value, local.get(0L));
+        }
+    }
+
+    private static List<Map.Entry<Long, String>> page(Map<Long, String> sorted, int offset, int limit) {
+        List<Map.Entry<Long, String>> result = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : sorted.entrySet()) {
+            if (result.size() >= limit) break;
+            if (offset-- > 0) continue;
+            result.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+        }
+        return result;
+    }
+
+}